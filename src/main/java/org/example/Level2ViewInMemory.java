@@ -2,6 +2,7 @@ package org.example;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Stream;
 
 public final class Level2ViewInMemory implements Level2View {
@@ -17,10 +18,32 @@ public final class Level2ViewInMemory implements Level2View {
      * That instance should have at least one Order.
      */
     private final Map<Long, OrdersAtPrice> asksById = new HashMap<>();
-    private final SortedMap<BigDecimal, OrdersAtPrice> asksByPrice = new TreeMap<>();
+    private final NavigableMap<BigDecimal, OrdersAtPrice> asksByPrice = new TreeMap<>();
 
     private final Map<Long, OrdersAtPrice> bidsById = new HashMap<>();
-    private final SortedMap<BigDecimal, OrdersAtPrice> bidsByPrice = new TreeMap<>(Comparator.reverseOrder());
+    private final NavigableMap<BigDecimal, OrdersAtPrice> bidsByPrice = new TreeMap<>(Comparator.reverseOrder());
+
+    /*
+     * Best level per side, maintained incrementally while holding the lock when a level is inserted or removed.
+     * Reads of the top of book and depth outnumber writes, so they're copied into volatile fields once per update
+     * and served from there without the lock. Copying only at the end of an update keeps a replace atomic for readers.
+     */
+    private OrdersAtPrice bestAsk;
+    private OrdersAtPrice bestBid;
+    private volatile BigDecimal topOfAsks;
+    private volatile BigDecimal topOfBids;
+    private volatile long asksDepth;
+    private volatile long bidsDepth;
+
+    /*
+     * Consumers that can't keep up with every update read the latest top of book from their own slot.
+     * Only written while holding the lock; a new value is published only when the top of book actually changed.
+     */
+    private final List<TopOfBookSubscription> topOfBookSubscriptions = new CopyOnWriteArrayList<>();
+    private BigDecimal publishedBidPrice;
+    private long publishedBidSize;
+    private BigDecimal publishedAskPrice;
+    private long publishedAskSize;
 
     private static class Order {
         final long id;
@@ -45,7 +68,7 @@ public final class Level2ViewInMemory implements Level2View {
         };
     }
 
-    private SortedMap<BigDecimal, OrdersAtPrice> getMapByPrice(Side side) {
+    private NavigableMap<BigDecimal, OrdersAtPrice> getMapByPrice(Side side) {
         return switch (side) {
             case ASK -> asksByPrice;
             case BID -> bidsByPrice;
@@ -55,6 +78,7 @@ public final class Level2ViewInMemory implements Level2View {
     private static class OrdersAtPrice {
         final BigDecimal price;
         final Map<Long, Order> orders;
+        long quantity;
 
         private OrdersAtPrice(BigDecimal price) {
             this.price = Objects.requireNonNull(price, () -> "price must not be null");
@@ -70,28 +94,47 @@ public final class Level2ViewInMemory implements Level2View {
 
     @Override
     public void onNewOrder(Side side, BigDecimal price, long quantity, long orderId) {
+        Objects.requireNonNull(side, () -> "side must not be null");
+        final var order = new Order(orderId, quantity);
+        final var ordersAtPrice = new OrdersAtPrice(price);
+        synchronized (lock) {
+            newOrder(side, order, ordersAtPrice);
+            refreshCachedReads();
+            publishTopOfBook();
+        }
+    }
+
+    // must be called while holding the lock
+    private void newOrder(Side side, Order order, OrdersAtPrice newOrdersAtPrice) {
         final var mapById = getMapById(side);
         final var mapByPrice = getMapByPrice(side);
 
-        final var order = new Order(orderId, quantity);
-        var ordersAtPrice = new OrdersAtPrice(price);
-        synchronized (lock) {
-            {
-                final var inserted = mapByPrice.putIfAbsent(price, ordersAtPrice);
-                final var isNewOrdersAtPrice = inserted == null;
-                if (!isNewOrdersAtPrice) {
-                    ordersAtPrice = inserted;
-                }
+        var ordersAtPrice = newOrdersAtPrice;
+        {
+            final var inserted = mapByPrice.putIfAbsent(ordersAtPrice.price, ordersAtPrice);
+            final var isNewOrdersAtPrice = inserted == null;
+            if (!isNewOrdersAtPrice) {
+                ordersAtPrice = inserted;
+            } else {
+                updateBestOnInsert(side, ordersAtPrice);
             }
+        }
 
-            ordersAtPrice.orders.put(orderId, order);
-            mapById.put(orderId, ordersAtPrice);
+        final var replaced = ordersAtPrice.orders.put(order.id, order);
+        if (replaced != null) {
+            ordersAtPrice.quantity -= replaced.quantity;
         }
+        ordersAtPrice.quantity += order.quantity;
+        mapById.put(order.id, ordersAtPrice);
     }
 
     @Override
     public void onCancelOrder(long orderId) {
-        cancelOrder(orderId);
+        synchronized (lock) {
+            cancelOrder(orderId);
+            refreshCachedReads();
+            publishTopOfBook();
+        }
     }
 
     private Side cancelOrder(long orderId) {
@@ -110,21 +153,64 @@ public final class Level2ViewInMemory implements Level2View {
                 throw new IllegalArgumentException("didn't find an order with id " + orderId);
             }
 
-            ordersAtPrice.orders.remove(orderId);
+            final var order = ordersAtPrice.orders.remove(orderId);
+            if (order == null) {
+                throw new IllegalArgumentException("didn't find an order with id " + orderId);
+            }
+            ordersAtPrice.quantity -= order.quantity;
             if (ordersAtPrice.orders.isEmpty()) {
                 mapById.remove(orderId);
                 mapByPrice.remove(ordersAtPrice.price);
+                updateBestOnRemove(side, ordersAtPrice);
             }
 
             return side;
         }
     }
 
+    // must be called while holding the lock
+    private void updateBestOnInsert(Side side, OrdersAtPrice inserted) {
+        switch (side) {
+            case ASK -> {
+                if (bestAsk == null || inserted.price.compareTo(bestAsk.price) < 0) {
+                    bestAsk = inserted;
+                }
+            }
+            case BID -> {
+                if (bestBid == null || inserted.price.compareTo(bestBid.price) > 0) {
+                    bestBid = inserted;
+                }
+            }
+        }
+    }
+
+    // must be called while holding the lock, after the level was removed from its map
+    private void updateBestOnRemove(Side side, OrdersAtPrice removed) {
+        switch (side) {
+            case ASK -> {
+                if (bestAsk == removed) {
+                    final var first = asksByPrice.firstEntry();
+                    bestAsk = first == null ? null : first.getValue();
+                }
+            }
+            case BID -> {
+                if (bestBid == removed) {
+                    final var first = bidsByPrice.firstEntry();
+                    bestBid = first == null ? null : first.getValue();
+                }
+            }
+        }
+    }
+
     @Override
     public void onReplaceOrder(BigDecimal price, long quantity, long orderId) {
+        final var order = new Order(orderId, quantity);
+        final var ordersAtPrice = new OrdersAtPrice(price);
         synchronized (lock) {
             final var side = cancelOrder(orderId);
-            onNewOrder(side, price, quantity, orderId);
+            newOrder(side, order, ordersAtPrice);
+            refreshCachedReads();
+            publishTopOfBook();
         }
     }
 
@@ -142,10 +228,19 @@ public final class Level2ViewInMemory implements Level2View {
                 throw new IllegalArgumentException("didn't find an order with id " + restingOrderId);
             }
             final var order = ordersAtPrice.orders.get(restingOrderId);
+            if (order == null) {
+                throw new IllegalArgumentException("didn't find an order with id " + restingOrderId);
+            }
+            if (quantity > order.quantity) {
+                throw new IllegalArgumentException("quantity should not exceed resting quantity " + order.quantity + ", got " + quantity);
+            }
             order.quantity = order.quantity - quantity;
+            ordersAtPrice.quantity = ordersAtPrice.quantity - quantity;
             if (order.quantity == 0) {
                 cancelOrder(restingOrderId);
             }
+            refreshCachedReads();
+            publishTopOfBook();
         }
     }
 
@@ -163,21 +258,70 @@ public final class Level2ViewInMemory implements Level2View {
 
     @Override
     public long getBookDepth(Side side) {
-        final var mapByPrice = getMapByPrice(side);
-        synchronized (lock) {
-            return mapByPrice.size();
-        }
+        return switch (side) {
+            case ASK -> asksDepth;
+            case BID -> bidsDepth;
+        };
     }
 
     @Override
     public BigDecimal getTopOfBook(Side side) {
-        final var mapByPrice = getMapByPrice(side);
+        return switch (side) {
+            case ASK -> topOfAsks;
+            case BID -> topOfBids;
+        };
+    }
+
+    /*
+     * Subscribes to a conflated top of book: the returned subscription always holds the latest best bid/ask
+     * and can be read at any pace without taking the lock.
+     * consumer gets unparked every time a new value is published.
+     */
+    public TopOfBookSubscription subscribeTopOfBook(Thread consumer) {
+        Objects.requireNonNull(consumer, () -> "consumer must not be null");
+        return subscribe(consumer);
+    }
+
+    public TopOfBookSubscription subscribeTopOfBook() {
+        return subscribe(null);
+    }
+
+    private TopOfBookSubscription subscribe(Thread consumer) {
+        final var subscription = new TopOfBookSubscription(consumer, topOfBookSubscriptions::remove);
         synchronized (lock) {
-            try {
-                return mapByPrice.firstKey();
-            } catch (NoSuchElementException e) {
-                return null;
-            }
+            subscription.publish(publishedBidPrice, publishedBidSize, publishedAskPrice, publishedAskSize);
+            topOfBookSubscriptions.add(subscription);
+        }
+        return subscription;
+    }
+
+    /*
+     * Both must be called while holding the lock at the end of every mutation, once the book is consistent again:
+     * refreshCachedReads unconditionally copies the best prices and depths served by getTopOfBook and getBookDepth,
+     * then publishTopOfBook writes to the subscribers' slots, only when the top of book changed.
+     */
+    private void refreshCachedReads() {
+        asksDepth = asksByPrice.size();
+        bidsDepth = bidsByPrice.size();
+        topOfAsks = bestAsk == null ? null : bestAsk.price;
+        topOfBids = bestBid == null ? null : bestBid.price;
+    }
+
+    private void publishTopOfBook() {
+        final var bidPrice = bestBid == null ? null : bestBid.price;
+        final var bidSize = bestBid == null ? 0L : bestBid.quantity;
+        final var askPrice = bestAsk == null ? null : bestAsk.price;
+        final var askSize = bestAsk == null ? 0L : bestAsk.quantity;
+        if (Objects.equals(bidPrice, publishedBidPrice) && bidSize == publishedBidSize
+                && Objects.equals(askPrice, publishedAskPrice) && askSize == publishedAskSize) {
+            return;
+        }
+        publishedBidPrice = bidPrice;
+        publishedBidSize = bidSize;
+        publishedAskPrice = askPrice;
+        publishedAskSize = askSize;
+        for (final var subscription : topOfBookSubscriptions) {
+            subscription.publish(bidPrice, bidSize, askPrice, askSize);
         }
     }
 
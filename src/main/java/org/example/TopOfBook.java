@@ -0,0 +1,11 @@
+package org.example;
+
+import java.math.BigDecimal;
+
+/*
+ * Best bid and ask with the total quantity resting at each of those levels.
+ * Sizes are summed order quantities, not the number of orders that Level2View.getSizeForPriceLevel returns.
+ * A missing side has a null price and a size of 0.
+ * version increases by one every time a new value is published to the subscription it was read from.
+ */
+public record TopOfBook(BigDecimal bidPrice, long bidSize, BigDecimal askPrice, long askSize, long version) {}
@@ -0,0 +1,73 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/*
+ * Conflating slot holding the latest top of book for a single consumer.
+ *
+ * The book is the only writer (it publishes while holding its lock), so a seqlock is enough:
+ * the sequence is odd while a write is in progress and readers retry until they see the same even sequence
+ * before and after copying the fields. Readers never take the book's lock and older values are simply overwritten,
+ * so a slow consumer only ever misses intermediate updates instead of slowing down the feed thread.
+ *
+ * A consumer thread can be registered to get unparked when a new value is published, so it can wait with
+ * LockSupport.park() until version() moves past the last value it read. Unparking never blocks or throws,
+ * so no consumer code ever runs on the feed thread.
+ */
+public final class TopOfBookSubscription implements AutoCloseable {
+
+    private final Thread consumer;
+    private final Consumer<TopOfBookSubscription> onClose;
+
+    private volatile long sequence;
+    private volatile BigDecimal bidPrice;
+    private volatile long bidSize;
+    private volatile BigDecimal askPrice;
+    private volatile long askSize;
+
+    // consumer may be null when nobody needs to be woken up
+    TopOfBookSubscription(Thread consumer, Consumer<TopOfBookSubscription> onClose) {
+        this.consumer = consumer;
+        this.onClose = Objects.requireNonNull(onClose, () -> "onClose must not be null");
+    }
+
+    // must only be called by the book, while holding its lock
+    void publish(BigDecimal bidPrice, long bidSize, BigDecimal askPrice, long askSize) {
+        final var current = sequence;
+        sequence = current + 1;
+        this.bidPrice = bidPrice;
+        this.bidSize = bidSize;
+        this.askPrice = askPrice;
+        this.askSize = askSize;
+        sequence = current + 2;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    // number of values published so far, cheap to poll to find out whether read() would return something new
+    public long version() {
+        return sequence >>> 1;
+    }
+
+    public TopOfBook read() {
+        while (true) {
+            final var before = sequence;
+            if ((before & 1L) == 0L) {
+                final var snapshot = new TopOfBook(bidPrice, bidSize, askPrice, askSize, before >>> 1);
+                if (sequence == before) {
+                    return snapshot;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public void close() {
+        onClose.accept(this);
+    }
+}
@@ -1,16 +1,20 @@
 package org.example;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.example.Level2View.Side;
 import static org.example.Level2ViewInMemory.Entry;
 
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
 
 import java.math.BigDecimal;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -21,6 +25,19 @@ public class Level2ViewTests {
         return new Level2ViewInMemory();
     }
 
+    private static void assertRejectedWithoutChanges(Level2ViewInMemory view, Executable operation, String message) {
+        final var entries = view.streamOrdersForTesting().collect(Collectors.toSet());
+        try (final var subscription = view.subscribeTopOfBook()) {
+            final var topOfBook = subscription.read();
+
+            final var exception = assertThrows(IllegalArgumentException.class, operation);
+            assertEquals(message, exception.getMessage());
+
+            assertEquals(entries, view.streamOrdersForTesting().collect(Collectors.toSet()));
+            assertEquals(topOfBook, subscription.read());
+        }
+    }
+
     @Nested
     class OnNewOrder {
 
@@ -149,6 +166,21 @@ public class Level2ViewTests {
             assertEquals("didn't find an order with id 1", exception.getMessage());
         }
 
+        @Test
+        void invalidLeavesBookUnchanged() {
+            final var view = underTest();
+            final var orderId = 1L;
+            view.onNewOrder(Side.ASK, BigDecimal.ONE, 5L, orderId);
+
+            assertRejectedWithoutChanges(
+                    view,
+                    () -> view.onReplaceOrder(BigDecimal.TEN, 0L, orderId),
+                    "quantity should be positive, got 0"
+            );
+            assertEquals(BigDecimal.ONE, view.getTopOfBook(Side.ASK));
+            assertEquals(1L, view.getBookDepth(Side.ASK));
+        }
+
         @Test
         void success() {
             final var view = underTest();
@@ -182,6 +214,19 @@ public class Level2ViewTests {
             assertEquals("didn't find an order with id 1", exception.getMessage());
         }
 
+        @Test
+        void overFill() {
+            final var view = underTest();
+            final var orderId = 1L;
+            view.onNewOrder(Side.ASK, BigDecimal.TEN, 3L, orderId);
+
+            assertRejectedWithoutChanges(
+                    view,
+                    () -> view.onTrade(4L, orderId),
+                    "quantity should not exceed resting quantity 3, got 4"
+            );
+        }
+
         @Test
         void success() {
             final var view = underTest();
@@ -247,6 +292,20 @@ public class Level2ViewTests {
 
             assertEquals(2L, view.getBookDepth(Side.ASK));
         }
+
+        @Test
+        void afterLevelsRemoved() {
+            final var view = underTest();
+
+            view.onNewOrder(Side.BID, BigDecimal.TEN, 3L, 1L);
+            view.onNewOrder(Side.BID, BigDecimal.ONE, 5L, 2L);
+            assertEquals(2L, view.getBookDepth(Side.BID));
+
+            view.onTrade(3L, 1L);
+            assertEquals(1L, view.getBookDepth(Side.BID));
+            view.onCancelOrder(2L);
+            assertEquals(0L, view.getBookDepth(Side.BID));
+        }
     }
 
 
@@ -287,6 +346,90 @@ public class Level2ViewTests {
             view.onCancelOrder(2L);
             assertEquals(BigDecimal.TEN, view.getTopOfBook(Side.ASK));
         }
+
+        @Test
+        void afterLevelsTraded() {
+            final var view = underTest();
+
+            view.onNewOrder(Side.ASK, BigDecimal.TEN, 3L, 1L);
+            view.onNewOrder(Side.ASK, BigDecimal.ONE, 3L, 2L);
+            view.onNewOrder(Side.ASK, BigDecimal.valueOf(5L), 3L, 3L);
+
+            view.onTrade(3L, 3L);
+            assertEquals(BigDecimal.ONE, view.getTopOfBook(Side.ASK));
+            view.onTrade(3L, 2L);
+            assertEquals(BigDecimal.TEN, view.getTopOfBook(Side.ASK));
+            view.onTrade(3L, 1L);
+            assertEquals(null, view.getTopOfBook(Side.ASK));
+        }
+    }
+
+    @Nested
+    class SubscribeTopOfBook {
+        @Test
+        void emptyBook() {
+            final var view = underTest();
+            final var subscription = view.subscribeTopOfBook();
+            assertEquals(new TopOfBook(null, 0L, null, 0L, 1L), subscription.read());
+        }
+
+        @Test
+        void latestValueWithSizes() {
+            final var view = underTest();
+            final var subscription = view.subscribeTopOfBook();
+
+            view.onNewOrder(Side.BID, BigDecimal.ONE, 3L, 1L);
+            view.onNewOrder(Side.BID, BigDecimal.ONE, 4L, 2L);
+            view.onNewOrder(Side.ASK, BigDecimal.TEN, 5L, 3L);
+            view.onNewOrder(Side.ASK, BigDecimal.valueOf(20L), 6L, 4L);
+
+            assertEquals(new TopOfBook(BigDecimal.ONE, 7L, BigDecimal.TEN, 5L, 4L), subscription.read());
+
+            view.onTrade(2L, 3L);
+            assertEquals(new TopOfBook(BigDecimal.ONE, 7L, BigDecimal.TEN, 3L, 5L), subscription.read());
+
+            view.onCancelOrder(3L);
+            assertEquals(new TopOfBook(BigDecimal.ONE, 7L, BigDecimal.valueOf(20L), 6L, 6L), subscription.read());
+
+            view.onReplaceOrder(BigDecimal.TEN, 1L, 1L);
+            assertEquals(new TopOfBook(BigDecimal.TEN, 1L, BigDecimal.valueOf(20L), 6L, 7L), subscription.read());
+        }
+
+        @Test
+        void sameIdAtSameLevel() {
+            final var view = underTest();
+            final var subscription = view.subscribeTopOfBook();
+
+            view.onNewOrder(Side.ASK, BigDecimal.ONE, 3L, 1L);
+            view.onNewOrder(Side.ASK, BigDecimal.ONE, 5L, 1L);
+
+            assertEquals(new TopOfBook(null, 0L, BigDecimal.ONE, 5L, 3L), subscription.read());
+        }
+
+        @Test
+        void unchangedTopIsNotPublished() {
+            final var view = underTest();
+            view.onNewOrder(Side.ASK, BigDecimal.ONE, 1L, 1L);
+            final var subscription = view.subscribeTopOfBook();
+            assertEquals(1L, subscription.version());
+
+            view.onNewOrder(Side.ASK, BigDecimal.TEN, 1L, 2L);
+            view.onCancelOrder(2L);
+
+            assertEquals(1L, subscription.version());
+        }
+
+        @Test
+        void close() {
+            final var view = underTest();
+            final var subscription = view.subscribeTopOfBook();
+            subscription.close();
+
+            view.onNewOrder(Side.ASK, BigDecimal.ONE, 1L, 1L);
+
+            assertEquals(1L, subscription.version());
+            assertEquals(new TopOfBook(null, 0L, null, 0L, 1L), subscription.read());
+        }
     }
 
     @Nested
@@ -411,6 +554,53 @@ public class Level2ViewTests {
             );
         }
 
+        @Test
+        void topOfBookSubscriptionIsConsistent() {
+            final var view = underTest();
+            final var subscription = view.subscribeTopOfBook();
+
+            view.onNewOrder(Side.ASK, BigDecimal.TEN, 1, 1L);
+            view.onNewOrder(Side.ASK, BigDecimal.ONE, 1, 2L);
+            view.onNewOrder(Side.BID, BigDecimal.ONE, 1, 3L);
+
+            IntStream.range(1, CONCURRENCY_RANGE).parallel()
+                    .forEach(id -> {
+                        if (id % 2 == 0) {
+                            view.onReplaceOrder(BigDecimal.valueOf(id % 3 + 1), id % 3 + 1, 3L);
+                        } else {
+                            final var topOfBook = subscription.read();
+                            assertEquals(BigDecimal.ONE, topOfBook.askPrice());
+                            assertEquals(1L, topOfBook.askSize());
+                            assertEquals(topOfBook.bidPrice().longValue(), topOfBook.bidSize());
+                        }
+                    });
+        }
+
+        @Test
+        void topOfBookSubscriptionUnparksConsumer() throws InterruptedException {
+            final var view = underTest();
+            final var received = new AtomicReference<TopOfBook>();
+            final var subscription = new AtomicReference<TopOfBookSubscription>();
+            final var waiting = new Thread(() -> {
+                final var sub = subscription.get();
+                while (sub.version() < 2L && !Thread.currentThread().isInterrupted()) {
+                    LockSupport.park();
+                }
+                received.set(sub.read());
+            });
+            waiting.setDaemon(true);
+            subscription.set(view.subscribeTopOfBook(waiting));
+            waiting.start();
+
+            view.onNewOrder(Side.BID, BigDecimal.ONE, 3L, 1L);
+
+            waiting.join(10_000L);
+            final var stillParked = waiting.isAlive();
+            waiting.interrupt();
+            assertFalse(stillParked, "consumer was not unparked by the update");
+            assertEquals(new TopOfBook(BigDecimal.ONE, 3L, null, 0L, 2L), received.get());
+        }
+
         @Test
         void randomOps() {
             final var view = underTest();